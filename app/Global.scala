@@ -0,0 +1,23 @@
+import infrastructure.cache.CacheInvalidation
+import infrastructure.db.ReadReplica
+import infrastructure.metrics.MetricsFilter
+import infrastructure.sql.SqlInstrumentation
+import play.api.Application
+import play.api.mvc._
+
+object Global extends WithFilters(new MetricsFilter) {
+
+  override def onStart(app: Application): Unit = {
+    ReadReplica.start(new play.Application(app))
+    CacheInvalidation.start(new play.Application(app))
+  }
+
+  override def onStop(app: Application): Unit = {
+    CacheInvalidation.stop()
+    ReadReplica.stop()
+  }
+
+  override def onRouteRequest(request: RequestHeader): Option[Handler] =
+    super.onRouteRequest(request).map(SqlInstrumentation.instrument)
+
+}
@@ -0,0 +1,33 @@
+package controllers.api;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Entity tags derived from the @Version column of an entity, so that a conditional GET can be answered
+ * from a version lookup alone, without loading or serializing the entity.
+ */
+public final class ETags {
+
+	private ETags() {
+	}
+
+	public static String of(final long version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * Returns true if the given If-None-Match header value matches the entity tag, i.e. the client's
+	 * representation is still current and a 304 can be sent.
+	 */
+	public static boolean matches(final String ifNoneMatch, final String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (final String candidate : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+			if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
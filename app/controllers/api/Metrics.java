@@ -0,0 +1,20 @@
+package controllers.api;
+
+import play.mvc.Controller;
+import play.mvc.Result;
+
+public class Metrics extends Controller {
+
+	/**
+	 * Returns per-route latency summaries, error and in-flight counts and subsystem timers
+	 *
+	 * Response:
+	 *
+	 * 200, text/plain (Prometheus text exposition format, version 0.0.4)
+	 *
+	 */
+	public static Result metrics() {
+		return ok(infrastructure.metrics.Metrics.prometheusText()).as("text/plain; version=0.0.4");
+	}
+
+}
@@ -1,9 +1,18 @@
 package controllers.api
 
+import java.io.ByteArrayOutputStream
+import javax.persistence.PersistenceException
+
+import com.avaje.ebean.{Ebean, TxCallable}
+import com.fasterxml.jackson.core.JsonGenerator
 import com.google.common.base.Optional
 import domain.model._
+import infrastructure.cache.CacheInvalidation
+import infrastructure.db.{JdbcExecution, ReadReplica}
+import infrastructure.sql.{SqlInstrumentation, SqlStats}
 import play.api.data._
 import play.api.data.Forms._
+import play.api.libs.iteratee.Enumerator
 import play.api.libs.json._
 import play.api.mvc._
 import play.data.format.Formats
@@ -11,11 +20,13 @@ import play.data.validation.Constraints
 import play.db.ebean.Transactional
 
 import scala.annotation.tailrec
-import scala.concurrent.ExecutionContext.Implicits.global
-import scala.concurrent.Future
+import scala.collection.JavaConverters._
+import scala.concurrent.{ExecutionContext, Future}
 import scala.util.control.NonFatal
 
 object Teams extends Controller {
+  private[api] implicit def ec: ExecutionContext = JdbcExecution.context
+
   private[api] case class TeamName(@Constraints.Required
                                    @Formats.NonEmpty
                                    name: String)
@@ -28,6 +39,19 @@ object Teams extends Controller {
   private[api] val memberIdForm: Form[MemberId] =
     Form(mapping("identity" -> nonEmptyText)(MemberId.apply)(MemberId.unapply))
 
+  private[api] case class MembershipDiff(add: List[String], remove: List[String])
+  private[api] val membershipDiffForm: Form[MembershipDiff] =
+    Form(mapping(
+      "add" -> default(list(nonEmptyText), Nil),
+      "remove" -> default(list(nonEmptyText), Nil)
+    )(MembershipDiff.apply)(MembershipDiff.unapply)
+      .verifying("The same identity cannot be both added and removed", d => d.add.intersect(d.remove).isEmpty))
+
+  private[api] case class MembershipOutcome(added: Seq[String],
+                                            removed: Seq[String],
+                                            unchanged: Seq[String],
+                                            unknown: Seq[String])
+
   private[api] def onFormErrors(formWithErrors: Form[_]) =
     Future.successful(BadRequest(formWithErrors.errorsAsJson))
 
@@ -49,8 +73,7 @@ object Teams extends Controller {
     teamNameForm.bindFromRequest().fold(hasErrors = onFormErrors,
       success = { case TeamName(name) =>
         (for {
-          _ <- Future(createNewTeamByName(name))
-          json <- teamJson(forName(name))
+          json <- teamJson(Future(createNewTeamByName(name)))
         } yield Created(json))
         .recover {
           case e @ (_: TeamNameAlreadyTakenException | _: NoSuchElementException) =>
@@ -63,10 +86,11 @@ object Teams extends Controller {
 
   @Transactional
   @throws[TeamNameAlreadyTakenException]
-  def createNewTeamByName(name: String) = {
+  def createNewTeamByName(name: String): Team = {
     val team = new Team()
     team.name = name
     team.add()
+    team
   }
 
   /**
@@ -105,13 +129,108 @@ object Teams extends Controller {
   @Transactional
   @throws[NoSuchElementException]
   def addMemberToTeam(teamId: Long, memberId: String): Boolean = {
-    val team: Team = getTeamByIdFromOpt(teamId)(Team.forId(teamId))
-    val newMember = getFromOpt(s"User with id $memberId cannot be found")(User.forId(memberId))
-    val added = team.members.add(newMember)
-    if (added) team.update()
+    val added = inTransaction {
+      val team: Team = getTeamByIdFromOpt(teamId)(Team.forId(teamId))
+      val newMember = getFromOpt(s"User with id $memberId cannot be found")(User.forId(memberId))
+      val added = team.members.add(newMember)
+      if (added) {
+        team.update()
+        Team.adjustMemberCount(teamId, 1)
+      }
+      added
+    }
+    if (added) CacheInvalidation.evict(classOf[Team], teamId)
     added
   }
 
+  /**
+    * Adds and removes Team Members in one go, e.g. when synchronizing a team from a directory
+    *
+    * Input:
+    *
+    * { "add" : ["johndoe", "janedoe"], "remove" : ["jackdoe"] }
+    *
+    * Response:
+    *
+    * 200
+    *
+    * {
+    *      "added" : ["johndoe"],
+    *      "removed" : ["jackdoe"],
+    *      "unchanged" : [],
+    *      "unknown" : ["janedoe"],
+    *      "members" : 4
+    * }
+    *
+    * (the outcome for every requested identity, and the new number of team members)
+    *
+    */
+  def updateMembers(teamId: Long) = Action.async(parse.json) { implicit rq =>
+    membershipDiffForm.bindFromRequest().fold(hasErrors = onFormErrors,
+      success = diff =>
+        (for {
+          outcome <- Future(applyMembershipDiff(teamId, diff))
+          team <- forId(teamId)
+        } yield Ok(membershipOutcomeWrites.writes(outcome) + ("members" -> JsNumber(team.memberCount))))
+          .recover {
+            case e: NoSuchElementException => BadRequest(Json.obj("error" -> e.getMessage))
+            case NonFatal(e) => InternalServerError(Json.obj("error" -> e.toString))
+          }
+    )
+  }
+
+  /**
+    * Applies the membership diff against the teamMembers table in one transaction, without loading the members
+    * of the team: existing memberships and users are looked up only for the requested identities.
+    */
+  @throws[NoSuchElementException]
+  def applyMembershipDiff(teamId: Long, diff: MembershipDiff): MembershipOutcome = {
+    val outcome = retryOnMembershipConflict(membershipConflictRetries) {
+      updateMembershipsInTransaction(teamId, diff)
+    }
+    if (outcome.added.nonEmpty || outcome.removed.nonEmpty) CacheInvalidation.evict(classOf[Team], teamId)
+    outcome
+  }
+
+  private[api] val membershipConflictRetries = 3
+
+  /**
+    * A concurrent request may insert one of our new memberships between our lookup and our commit, which the
+    * teamMembers primary key rejects. Running the diff again then sees that membership and reports it as
+    * unchanged.
+    */
+  @tailrec
+  private[api] def retryOnMembershipConflict[T](retries: Int)(body: => T): T = {
+    val attempt =
+      try Right(body)
+      catch { case e: PersistenceException if retries > 0 && UniqueViolations.causedBy(e) => Left(e) }
+    attempt match {
+      case Right(result) => result
+      case Left(_) => retryOnMembershipConflict(retries - 1)(body)
+    }
+  }
+
+  private[api] def updateMembershipsInTransaction(teamId: Long, diff: MembershipDiff): MembershipOutcome = inTransaction {
+    if (!Team.exists(teamId)) throw new NoSuchElementException(s"No team found with id $teamId")
+    val adds = diff.add.distinct
+    val removes = diff.remove.distinct
+    val current = Team.membersAmong(teamId, adds.asJava).asScala
+    val known = User.existingIds((adds ++ removes).asJava).asScala
+    val (toAdd, notAdded) = adds.partition(id => known(id) && !current(id))
+    // Only the rows this request deleted count as removed, so a concurrent removal of the same member is not
+    // counted twice. The deletes run before batch mode, which reports no row counts.
+    val removed = removes.filter(id => Team.deleteMember(teamId, id) > 0)
+    val notRemoved = removes.diff(removed)
+    Ebean.currentTransaction().setBatchMode(true)
+    Team.insertMembers(teamId, toAdd.asJava)
+    if (toAdd.size != removed.size) Team.adjustMemberCount(teamId, toAdd.size - removed.size)
+    MembershipOutcome(
+      added = toAdd,
+      removed = removed,
+      unchanged = notAdded.filter(known) ++ notRemoved.filter(known),
+      unknown = notAdded.filterNot(known) ++ notRemoved.filterNot(known))
+  }
+
   /**
     * Returns the Team Members of the Team with the given id
     *
@@ -124,13 +243,13 @@ object Teams extends Controller {
     *
     */
   def getMembers(teamId: Long) = Action.async {
-    (for {
-      json <- membersJson(forId(teamId))
-    } yield Ok(json))
-      .recover {
-        case e: NoSuchElementException => BadRequest(Json.obj("teamId" -> e.getMessage))
-        case NonFatal(e) => InternalServerError(Json.obj("error" -> e.toString))
-      }
+    val stats = SqlStats.current()
+    Future(readOnly(Team.exists(teamId))).map { exists =>
+      if (exists) Ok.chunked(membersStream(teamId, stats)).as(JSON)
+      else BadRequest(Json.obj("teamId" -> s"No team found with id $teamId"))
+    }.recover {
+      case NonFatal(e) => InternalServerError(Json.obj("error" -> e.toString))
+    }
   }
 
   /**
@@ -142,14 +261,27 @@ object Teams extends Controller {
     * {"id": 1, "name": "Team Foo", "members": 0}
     *
     */
-  def getTeam(teamId: Long) = Action.async {
-    (for {
-      json <- teamJson(forId(teamId))
-    } yield Ok(json))
-      .recover {
-        case e: NoSuchElementException => BadRequest(Json.obj("id" -> e.getMessage))
-        case NonFatal(e) => InternalServerError(Json.obj("error" -> e.toString))
-      }
+  def getTeam(teamId: Long) = Action.async { rq =>
+    val notModified = rq.headers.get(IF_NONE_MATCH) match {
+      case Some(ifNoneMatch) =>
+        Future(readOnly(Team.versionOf(teamId))).map { version =>
+          if (version.isPresent && ETags.matches(ifNoneMatch, ETags.of(version.get)))
+            Some(NotModified.withHeaders(ETAG -> ETags.of(version.get)))
+          else None
+        }
+      case None => Future.successful(None)
+    }
+    notModified.flatMap {
+      case Some(result) => Future.successful(result)
+      case None =>
+        for {
+          team <- Future(readOnly(Team.forId(teamId))).map(getTeamByIdFromOpt(teamId))
+          json <- teamJson(Future.successful(team))
+        } yield Ok(json).withHeaders(ETAG -> ETags.of(team.version))
+    }.recover {
+      case e: NoSuchElementException => BadRequest(Json.obj("id" -> e.getMessage))
+      case NonFatal(e) => InternalServerError(Json.obj("error" -> e.toString))
+    }
   }
 
   /**
@@ -174,24 +306,30 @@ object Teams extends Controller {
   @Transactional
   @throws[NoSuchElementException]
   def removeMemberFromTeam(teamId: Long, memberId: String) = {
-    val team: Team = getTeamByIdFromOpt(teamId)(Team.forId(teamId))
-    @tailrec
-    def seekAndDestroy(jit: java.util.Iterator[User]): Boolean = {
-      if (jit.hasNext) {
-        if (jit.next().username == memberId) {
-          jit.remove()
-          true
-        } else seekAndDestroy(jit)
-      } else false
+    val removed = inTransaction {
+      getTeamByIdFromOpt(teamId)(Team.forId(teamId))
+      // Count only the row this request deleted, so concurrent removals of the same member decrement once
+      val deleted = Team.deleteMember(teamId, memberId)
+      if (deleted > 0) Team.adjustMemberCount(teamId, -deleted)
+      deleted > 0
     }
-    if (seekAndDestroy(team.members.iterator)) team.update()
+    if (removed) CacheInvalidation.evict(classOf[Team], teamId)
   }
 
   private[api] val teamWrites = new Writes[Team] {
     def writes(t: Team) = Json.obj(
       "id" -> t.id,
       "name" -> t.name,
-      "members" -> t.members.size
+      "members" -> t.memberCount
+    )
+  }
+
+  private[api] val membershipOutcomeWrites = new OWrites[MembershipOutcome] {
+    def writes(o: MembershipOutcome) = Json.obj(
+      "added" -> o.added,
+      "removed" -> o.removed,
+      "unchanged" -> o.unchanged,
+      "unknown" -> o.unknown
     )
   }
 
@@ -203,21 +341,73 @@ object Teams extends Controller {
     )
   }
 
+  private[api] val membersChunkSize = 100
+
+  /**
+    * Streams the members of a team as a JSON array, one keyset query of at most `membersChunkSize` users per
+    * chunk, so memory per request does not grow with the size of the team and no connection is held while
+    * the client reads the response.
+    */
+  private[api] def membersStream(teamId: Long, stats: SqlStats): Enumerator[Array[Byte]] = {
+    var last: Option[String] = None
+    var done = false
+    Enumerator.fromCallback1(
+      // The chunks are retrieved after the action has returned, so they count towards its stats explicitly
+      retriever = isFirst => Future(SqlInstrumentation.boundTo(stats) {
+        if (done) None
+        else {
+          val page = readOnly(User.membersOf(teamId, last.orNull, membersChunkSize)).asScala
+          val out = new ByteArrayOutputStream()
+          val gen = play.libs.Json.mapper().getFactory.createGenerator(out)
+          gen.setRootValueSeparator(null)
+          if (isFirst) gen.writeRaw('[')
+          for ((member, i) <- page.zipWithIndex) {
+            if (!isFirst || i > 0) gen.writeRaw(',')
+            writeMember(gen, member)
+          }
+          if (page.size < membersChunkSize) {
+            gen.writeRaw(']')
+            done = true
+          } else last = Some(page.last.username)
+          gen.close()
+          Some(out.toByteArray)
+        }
+      })
+    )
+  }
+
+  private[api] def writeMember(gen: JsonGenerator, u: User): Unit = {
+    gen.writeStartObject()
+    gen.writeStringField("identity", u.username)
+    gen.writeStringField("email", u.getProfile.email)
+    gen.writeStringField("name", s"${u.getProfile.firstName} ${u.getProfile.lastName}")
+    gen.writeEndObject()
+  }
+
   private[api] def teamJson(tf: Future[Team]): Future[JsValue] =
     tf.map(Json.toJson(_)(teamWrites))
 
   private[api] def membersJson(tf: Future[Team]): Future[JsValue] = {
     implicit val writes = memberWrites
-    import scala.collection.JavaConverters._
     tf.map(t => Json.toJson(t.members.asScala))
   }
 
+  /**
+    * Runs the queries of body on the read replica, if one is configured. Only for actions that do not write.
+    */
+  private[api] def readOnly[T](body: => T): T = {
+    val previous = ReadReplica.enter()
+    try body finally ReadReplica.exit(previous)
+  }
+
+  private[api] def inTransaction[T](body: => T): T =
+    Ebean.execute(new TxCallable[T] {
+      def call(): T = body
+    })
+
   private[api] def forId(id: Long): Future[Team] =
     Future(domain.model.Team.forId(id)).map(getTeamByIdFromOpt(id))
 
-  private[api] def forName(name: String): Future[Team] =
-    Future(domain.model.Team.forName(name)).map(getFromOpt(s"No team found with name $name"))
-
   private[api] def getTeamByIdFromOpt(id: Long)(teamOpt: Optional[Team]) =
     getFromOpt(s"No team found with id $id")(teamOpt)
 
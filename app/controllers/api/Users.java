@@ -4,69 +4,103 @@ import play.mvc.Controller;
 import play.mvc.Result;
 import play.mvc.BodyParser;
 import play.data.Form;
+import play.libs.F;
 import play.libs.Json;
-import play.db.ebean.Transactional;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.TxCallable;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import com.google.common.collect.*;
 import com.google.common.base.Optional;
 
+import infrastructure.db.JdbcExecution;
+import infrastructure.db.ReadOnly;
+
 import domain.model.User;
 import domain.model.UserNameAlreadyTakenException;
 
+/**
+ * Binding and validation run on the request thread; all database work runs on the JDBC execution context
+ * ({@link JdbcExecution}), so the actions never block Play's default dispatcher.
+ */
 public class Users extends Controller {
 	
 	static Form<User> userForm = Form.form(User.class);
 	static Form<User.Profile> profileForm = Form.form(User.Profile.class);
 
 	@BodyParser.Of(BodyParser.Json.class)
-	@Transactional
-	public static Result register() {
+	public static F.Promise<Result> register() {
 		final JsonNode json = request().body().asJson();
 		final Form<User> filled = userForm.bind(json);
 		if (filled.hasErrors()) {
-			return badRequest(filled.errorsAsJson());
+			return F.Promise.<Result>pure(badRequest(filled.errorsAsJson()));
 		} else {
 			final User user = filled.get();
-			try {
-				user.add();
-			} catch (UserNameAlreadyTakenException ex) {
-				return badRequest(Json.toJson(ImmutableMap.of("username", ImmutableList.of(ex.getMessage()))));
-			}
-			return created();
+			return F.Promise.promise(new F.Function0<Result>() {
+				public Result apply() {
+					try {
+						user.add();
+					} catch (UserNameAlreadyTakenException ex) {
+						return badRequest(Json.toJson(ImmutableMap.of("username", ImmutableList.of(ex.getMessage()))));
+					}
+					return created();
+				}
+			}, JdbcExecution.httpContext());
 		}
 	}
 
-	public static Result getProfile(String userId) {
-		final Optional<User> user = User.forId(userId);
-		if (user.isPresent()) {
-			return ok(Json.toJson(user.get().profile));
-		} else {
-		return notFound(Json.toJson(ImmutableMap.of("error", "User with id " + userId + " cannot be found")));
-		}
+	/**
+	 * Supports conditional GETs: when the request carries If-None-Match, only the user's version is looked up,
+	 * and a 304 is returned without loading or serializing the profile if it still matches.
+	 */
+	@ReadOnly
+	public static F.Promise<Result> getProfile(final String userId) {
+		final String ifNoneMatch = request().getHeader(IF_NONE_MATCH);
+		return F.Promise.promise(new F.Function0<Result>() {
+			public Result apply() {
+				if (ifNoneMatch != null) {
+					final Optional<Long> version = User.versionOf(userId);
+					if (version.isPresent() && ETags.matches(ifNoneMatch, ETags.of(version.get()))) {
+						response().setHeader(ETAG, ETags.of(version.get()));
+						return status(NOT_MODIFIED);
+					}
+				}
+				final Optional<User> user = User.forId(userId);
+				if (user.isPresent()) {
+					response().setHeader(ETAG, ETags.of(user.get().version));
+					return ok(Json.toJson(user.get().profile));
+				} else {
+				return notFound(Json.toJson(ImmutableMap.of("error", "User with id " + userId + " cannot be found")));
+				}
+			}
+		}, JdbcExecution.httpContext());
 	}
 
 	@BodyParser.Of(BodyParser.Json.class)
-
-	@Transactional
-	public static Result updateProfile(String userId) {
-		final Optional<User> user = User.forId(userId);
-		if (!user.isPresent()) {
-			return status(PRECONDITION_FAILED, Json.toJson(ImmutableMap.of("error", "Cannot PUT profile before creating user")));
-		} else {
-			final JsonNode json = request().body().asJson();
-			final Form<User.Profile> filled = profileForm.bind(json);
-			if (filled.hasErrors()) {
-				return badRequest(filled.errorsAsJson());
-			} else {
-				final User.Profile profile = filled.get();
-				final User theUser = user.get();
-				theUser.profile = profile;
-				theUser.save();
-				return ok();
+	public static F.Promise<Result> updateProfile(final String userId) {
+		final JsonNode json = request().body().asJson();
+		final Form<User.Profile> filled = profileForm.bind(json);
+		return F.Promise.promise(new F.Function0<Result>() {
+			public Result apply() {
+				return Ebean.execute(new TxCallable<Result>() {
+					public Result call() {
+						final Optional<User> user = User.forId(userId);
+						if (!user.isPresent()) {
+							return status(PRECONDITION_FAILED, Json.toJson(ImmutableMap.of("error", "Cannot PUT profile before creating user")));
+						} else if (filled.hasErrors()) {
+							return badRequest(filled.errorsAsJson());
+						} else {
+							final User.Profile profile = filled.get();
+							final User theUser = user.get();
+							theUser.profile = profile;
+							theUser.save();
+							return ok();
+						}
+					}
+				});
 			}
-		}
+		}, JdbcExecution.httpContext());
 	}
 
-}
\ No newline at end of file
+}
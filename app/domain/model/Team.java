@@ -1,15 +1,25 @@
 package domain.model;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Query;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.annotation.CacheStrategy;
+import com.avaje.ebean.annotation.CacheTuning;
 import com.google.common.base.Optional;
+import infrastructure.db.ReadReplica;
 import play.data.format.Formats;
 import play.data.validation.Constraints;
 import play.db.ebean.Model;
 
 import javax.persistence.*;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @Entity
+@CacheStrategy(useBeanCache = true)
+@CacheTuning(maxSize = 10000, maxIdleSecs = 600, maxSecsToLive = 3600)
 public class Team extends Model {
     @Id
     public long id;
@@ -26,21 +36,113 @@ public class Team extends Model {
     )
     public Set<User> members = new HashSet<>();
 
+    /**
+     * Denormalized size of {@link #members}, kept current by {@link #adjustMemberCount} so that reading a team
+     * never has to touch the teamMembers table.
+     */
+    public int memberCount;
+
+    @Version
+    public Long version;
+
     public final static Finder<Long, Team> find = new Finder<>(Long.class, Team.class);
+    final static Finder<Long, Team> replicaFind = new Finder<>(ReadReplica.SERVER, Long.class, Team.class);
+
+    /**
+     * A query that may be served by the read replica, i.e. the replica in read-only actions. Replica queries
+     * neither read nor fill the bean cache, as only the primary's cache is kept current by
+     * {@link infrastructure.cache.CacheInvalidation}.
+     */
+    static Query<Team> reads() {
+        return ReadReplica.isReading() ? replicaFind.setUseCache(false).setLoadBeanCache(false) : find.query();
+    }
 
     public static Optional<Team> forId(final Long id) {
-        return Optional.fromNullable(find.byId(id));
+        return Optional.fromNullable(reads().setId(id).findUnique());
+    }
+
+    /**
+     * Looks up only the version of the team, for answering conditional requests without loading it.
+     */
+    public static Optional<Long> versionOf(final long id) {
+        final Team team = reads().select("version").where().idEq(id).findUnique();
+        return team == null ? Optional.<Long>absent() : Optional.fromNullable(team.version);
+    }
+
+    public static boolean exists(final long id) {
+        return reads().where().idEq(id).findRowCount() > 0;
     }
 
     public static Optional<Team> forName(final String name) {
-        return Optional.fromNullable(find.where().eq("name", name).findUnique());
+        return Optional.fromNullable(reads().where().eq("name", name).findUnique());
+    }
+
+    /**
+     * Atomically adds delta to the member count of the team and bumps its version. Must be called in the same
+     * transaction as the change to the teamMembers table.
+     */
+    public static void adjustMemberCount(final long id, final int delta) {
+        Ebean.createSqlUpdate("update team set member_count = member_count + :delta, version = version + 1 where id = :id")
+            .setParameter("delta", delta)
+            .setParameter("id", id)
+            .execute();
+    }
+
+    /**
+     * Returns those of the given member ids that are members of the team, reading only the teamMembers table.
+     */
+    public static Set<String> membersAmong(final long id, final Collection<String> memberIds) {
+        final Set<String> members = new HashSet<>();
+        if (memberIds.isEmpty()) {
+            return members;
+        }
+        final List<SqlRow> rows = Ebean
+            .createSqlQuery("select memberId as member_id from teamMembers where teamId = :id and memberId in (:memberIds)")
+            .setParameter("id", id)
+            .setParameter("memberIds", memberIds)
+            .findList();
+        for (final SqlRow row : rows) {
+            members.add(row.getString("member_id"));
+        }
+        return members;
+    }
+
+    /**
+     * Inserts the given memberships directly into the teamMembers table, batched when the current transaction
+     * is in batch mode. The caller is responsible for adjusting the member count.
+     */
+    public static void insertMembers(final long id, final Collection<String> memberIds) {
+        for (final String memberId : memberIds) {
+            Ebean.createSqlUpdate("insert into teamMembers (teamId, memberId) values (:id, :memberId)")
+                .setParameter("id", id)
+                .setParameter("memberId", memberId)
+                .execute();
+        }
+    }
+
+    /**
+     * Deletes the membership from the teamMembers table and returns the number of rows deleted, which is 0 if a
+     * concurrent request deleted it first. The caller is responsible for adjusting the member count.
+     */
+    public static int deleteMember(final long id, final String memberId) {
+        return Ebean.createSqlUpdate("delete from teamMembers where teamId = :id and memberId = :memberId")
+            .setParameter("id", id)
+            .setParameter("memberId", memberId)
+            .execute();
     }
 
+    /**
+     * Inserts the team in a single statement, relying on the unique constraint on the name to reject a taken
+     * team name, which also holds when two requests for the same name race each other.
+     */
     public final void add() throws TeamNameAlreadyTakenException {
-        if (forName(name).isPresent()) {
-            throw new TeamNameAlreadyTakenException("Team name " + name + " is already taken");
-        } else {
+        try {
             save();
+        } catch (PersistenceException ex) {
+            if (UniqueViolations.causedBy(ex)) {
+                throw new TeamNameAlreadyTakenException("Team name " + name + " is already taken");
+            }
+            throw ex;
         }
     }
 
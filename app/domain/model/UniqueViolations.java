@@ -0,0 +1,29 @@
+package domain.model;
+
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+
+/**
+ * Recognizes unique constraint violations reported by the database, so that an INSERT can be attempted
+ * directly and a conflict mapped to a domain exception, instead of checking for the key beforehand.
+ */
+public final class UniqueViolations {
+
+	private static final String UNIQUE_VIOLATION_STATE = "23505";
+	private static final int MYSQL_DUPLICATE_ENTRY = 1062;
+
+	private UniqueViolations() {
+	}
+
+	public static boolean causedBy(final PersistenceException ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				final SQLException sqlEx = (SQLException) cause;
+				if (UNIQUE_VIOLATION_STATE.equals(sqlEx.getSQLState()) || sqlEx.getErrorCode() == MYSQL_DUPLICATE_ENTRY) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -4,13 +4,24 @@ import play.db.ebean.*;
 import play.data.validation.Constraints;
 import play.data.format.Formats;
 
+import com.avaje.ebean.ExpressionList;
+import com.avaje.ebean.Query;
+import com.avaje.ebean.annotation.CacheStrategy;
+import com.avaje.ebean.annotation.CacheTuning;
 import com.google.common.base.Optional;
+import infrastructure.db.ReadReplica;
 
 import javax.persistence.*;
 import javax.validation.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @Entity
+@CacheStrategy(useBeanCache = true)
+@CacheTuning(maxSize = 10000, maxIdleSecs = 600, maxSecsToLive = 3600)
 public class User extends Model {
 	@Id
 	@Constraints.Required
@@ -23,18 +34,74 @@ public class User extends Model {
 	@Constraints.Required
 	@Formats.NonEmpty
 	public String password;
+	@Version
+	public Long version;
+
+	@ManyToMany(mappedBy = "members")
+	public Set<Team> teams = new HashSet<>();
 
 	public final static Finder<String, User> find = new Finder<String, User>(String.class, User.class);
+	final static Finder<String, User> replicaFind = new Finder<String, User>(ReadReplica.SERVER, String.class, User.class);
+
+	/**
+	 *  A query that may be served by the read replica, i.e. the replica in read-only actions. Replica queries
+	 *  neither read nor fill the bean cache, as only the primary's cache is kept current by
+	 *  {@link infrastructure.cache.CacheInvalidation}.
+	 */
+	static Query<User> reads() {
+		return ReadReplica.isReading() ? replicaFind.setUseCache(false).setLoadBeanCache(false) : find.query();
+	}
 	
 	public static Optional<User> forId(final String username) {
-		return Optional.fromNullable(find.byId(username));
+		return Optional.fromNullable(reads().setId(username).findUnique());
+	}
+
+	/**
+	 *  Looks up only the version of the user, for answering conditional requests without loading the profile.
+	 */
+	public static Optional<Long> versionOf(final String username) {
+		final User user = reads().select("version").where().idEq(username).findUnique();
+		return user == null ? Optional.<Long>absent() : Optional.fromNullable(user.version);
+	}
+
+	/**
+	 *  Returns those of the given user names that belong to existing users, without loading the users.
+	 */
+	public static Set<String> existingIds(final Collection<String> usernames) {
+		final Set<String> existing = new HashSet<>();
+		if (!usernames.isEmpty()) {
+			for (final Object id : find.where().in("username", usernames).findIds()) {
+				existing.add((String) id);
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 *  Returns up to limit members of the given team, ordered by user name and starting after the given
+	 *  user name (or from the first member, if null). Paging by user name keeps every page an index seek,
+	 *  and no connection is held between pages.
+	 */
+	public static List<User> membersOf(final long teamId, final String after, final int limit) {
+		final ExpressionList<User> members = reads().where().eq("teams.id", teamId);
+		if (after != null) {
+			members.gt("username", after);
+		}
+		return members.orderBy("username").setMaxRows(limit).findList();
 	}
 
+	/**
+	 *  Inserts the user in a single statement, relying on the primary key to reject a taken user name,
+	 *  which also holds when two registrations for the same name race each other.
+	 */
 	public final void add() throws UserNameAlreadyTakenException {
-		if (forId(username).isPresent()) {
-			throw new UserNameAlreadyTakenException("User name " + username + " is already taken");
-		} else {
+		try {
 			save();
+		} catch (PersistenceException ex) {
+			if (UniqueViolations.causedBy(ex)) {
+				throw new UserNameAlreadyTakenException("User name " + username + " is already taken");
+			}
+			throw ex;
 		}
 	}
 
@@ -0,0 +1,199 @@
+package infrastructure.cache;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.cache.ServerCacheManager;
+import domain.model.Team;
+import domain.model.User;
+import play.Application;
+import play.Configuration;
+import play.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.UUID;
+
+/**
+ * Keeps the Ebean L2 caches of all app nodes consistent. A change to a cached entity is evicted from the local
+ * caches right away and published on a Redis channel, and every other node evicts it when the message arrives.
+ * A node clears its caches whenever it (re)subscribes, as it may have missed messages while it was disconnected
+ * from Redis.
+ *
+ * Without cache.invalidation.redis.host configured, eviction is local only, which is correct for a single node.
+ *
+ * Message format: "nodeId|entityClass|idType|id", where idType is L for Long ids and S for String ids.
+ */
+public final class CacheInvalidation {
+
+	private static final Logger.ALogger logger = Logger.of("cache");
+	private static final String nodeId = UUID.randomUUID().toString();
+	private static final Class<?>[] cachedTypes = { User.class, Team.class };
+
+	private static volatile JedisPool pool;
+	private static volatile String channel;
+	private static volatile Subscriber subscriber;
+
+	private CacheInvalidation() {
+	}
+
+	public static void start(final Application app) {
+		final Configuration conf = app.configuration();
+		final String host = conf.getString("cache.invalidation.redis.host");
+		if (host == null) {
+			logger.info("No cache.invalidation.redis.host configured, L2 cache invalidation is local only");
+			return;
+		}
+		final int port = conf.getInt("cache.invalidation.redis.port", 6379);
+		channel = conf.getString("cache.invalidation.redis.channel", "ebean-cache-invalidation");
+		pool = new JedisPool(new JedisPoolConfig(), host, port);
+		subscriber = new Subscriber(host, port);
+		final Thread thread = new Thread(subscriber, "cache-invalidation-subscriber");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public static void stop() {
+		final Subscriber stopping = subscriber;
+		subscriber = null;
+		if (stopping != null) {
+			stopping.stop();
+		}
+		final JedisPool closing = pool;
+		pool = null;
+		if (closing != null) {
+			closing.destroy();
+		}
+	}
+
+	/**
+	 * Evicts the entity with the given id from the caches of this node and tells the other nodes to do the same.
+	 * Call after the transaction that changed it has committed.
+	 */
+	public static void evict(final Class<?> type, final Object id) {
+		evictLocally(type, id);
+		final JedisPool publishing = pool;
+		if (publishing == null) {
+			return;
+		}
+		final String idType = id instanceof Long ? "L" : "S";
+		Jedis jedis = null;
+		try {
+			jedis = publishing.getResource();
+			jedis.publish(channel, nodeId + "|" + type.getName() + "|" + idType + "|" + id);
+			publishing.returnResource(jedis);
+		} catch (RuntimeException ex) {
+			// Other nodes fall back to the cache time-to-live for this entity
+			logger.error("Cannot publish cache invalidation for " + type.getName() + " " + id, ex);
+			if (jedis != null) {
+				publishing.returnBrokenResource(jedis);
+			}
+		}
+	}
+
+	static void evictLocally(final Class<?> type, final Object id) {
+		// Only the primary Ebean server caches beans, cached lookups never go to the replica
+		final ServerCacheManager caches = Ebean.getServerCacheManager();
+		if (caches.isBeanCaching(type)) {
+			caches.getBeanCache(type).remove(id);
+			caches.getNaturalKeyCache(type).clear();
+			caches.getQueryCache(type).clear();
+		}
+	}
+
+	static void clearLocally() {
+		final ServerCacheManager caches = Ebean.getServerCacheManager();
+		for (final Class<?> type : cachedTypes) {
+			caches.clear(type);
+		}
+	}
+
+	static void received(final String message) {
+		final String[] parts = message.split("\\|", 4);
+		if (parts.length != 4 || parts[0].equals(nodeId)) {
+			return;
+		}
+		try {
+			final Class<?> type = Class.forName(parts[1], true, CacheInvalidation.class.getClassLoader());
+			evictLocally(type, parts[2].equals("L") ? (Object) Long.valueOf(parts[3]) : parts[3]);
+		} catch (ClassNotFoundException | NumberFormatException ex) {
+			logger.warn("Ignoring malformed cache invalidation " + message);
+		}
+	}
+
+	/**
+	 * Listens on the invalidation channel, reconnecting after a Redis failure until stopped.
+	 */
+	private static class Subscriber extends JedisPubSub implements Runnable {
+		private final String host;
+		private final int port;
+		private volatile boolean running = true;
+
+		Subscriber(final String host, final int port) {
+			this.host = host;
+			this.port = port;
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				final Jedis jedis = new Jedis(host, port);
+				try {
+					jedis.subscribe(this, channel);
+				} catch (RuntimeException ex) {
+					if (running) {
+						logger.error("Cache invalidation subscription failed, reconnecting", ex);
+						try {
+							Thread.sleep(1000);
+						} catch (InterruptedException ie) {
+							return;
+						}
+					}
+				} finally {
+					try {
+						jedis.disconnect();
+					} catch (RuntimeException ex) {
+						// The connection is already broken, there is nothing left to close
+					}
+				}
+			}
+		}
+
+		void stop() {
+			running = false;
+			if (isSubscribed()) {
+				unsubscribe();
+			}
+		}
+
+		@Override
+		public void onMessage(final String channel, final String message) {
+			received(message);
+		}
+
+		@Override
+		public void onPMessage(final String pattern, final String channel, final String message) {
+		}
+
+		/**
+		 * Invalidations published while this node was not subscribed are lost, so on every (re)subscribe the
+		 * local caches start over.
+		 */
+		@Override
+		public void onSubscribe(final String channel, final int subscribedChannels) {
+			clearLocally();
+		}
+
+		@Override
+		public void onUnsubscribe(final String channel, final int subscribedChannels) {
+		}
+
+		@Override
+		public void onPUnsubscribe(final String pattern, final int subscribedChannels) {
+		}
+
+		@Override
+		public void onPSubscribe(final String pattern, final int subscribedChannels) {
+		}
+	}
+}
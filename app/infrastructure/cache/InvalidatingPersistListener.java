@@ -0,0 +1,50 @@
+package infrastructure.cache;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.annotation.CacheStrategy;
+import com.avaje.ebean.event.BeanPersistListener;
+
+import java.util.Set;
+
+/**
+ * Evicts updated and deleted entities that use the bean cache, on this node and (through
+ * {@link CacheInvalidation}) on all others, once their transaction has committed.
+ *
+ * Inserts need no eviction, since nothing can be cached for an entity that did not exist.
+ */
+public class InvalidatingPersistListener implements BeanPersistListener<Object> {
+
+	@Override
+	public boolean isRegisterFor(final Class<?> cls) {
+		return cls.isAnnotationPresent(CacheStrategy.class);
+	}
+
+	@Override
+	public boolean inserted(final Object bean) {
+		return false;
+	}
+
+	@Override
+	public boolean updated(final Object bean, final Set<String> updatedProperties) {
+		CacheInvalidation.evict(bean.getClass(), Ebean.getServer(null).getBeanId(bean));
+		return false;
+	}
+
+	@Override
+	public boolean deleted(final Object bean) {
+		CacheInvalidation.evict(bean.getClass(), Ebean.getServer(null).getBeanId(bean));
+		return false;
+	}
+
+	@Override
+	public void remoteInserted(final Object id) {
+	}
+
+	@Override
+	public void remoteUpdated(final Object id) {
+	}
+
+	@Override
+	public void remoteDeleted(final Object id) {
+	}
+}
@@ -0,0 +1,51 @@
+package infrastructure.db
+
+import infrastructure.sql.SqlInstrumentation
+import play.api.Play
+import play.api.libs.concurrent.Akka
+import play.libs.HttpExecution
+
+import scala.concurrent.ExecutionContext
+
+/**
+  * The execution context for blocking Ebean/JDBC work, so that it never runs on (and starves) Play's default
+  * dispatcher. Its thread pool is configured as `contexts.jdbc` in application.conf. It serves both the primary
+  * and the replica connection pool, so it has a thread for each connection of the two: more threads would only
+  * queue on connections, fewer would leave connections idle.
+  *
+  * Tasks run with the thread-bound request state of the code that submitted them: the SQL stats of the request
+  * and the read replica routing of read-only actions.
+  */
+object JdbcExecution {
+
+  val ContextName = "contexts.jdbc"
+
+  /**
+    * For Scala controllers; look it up per use, as the dispatcher belongs to the running application.
+    */
+  def context: ExecutionContext =
+    propagatingReplicaRouting(SqlInstrumentation.propagating(Akka.system(Play.current).dispatchers.lookup(ContextName)))
+
+  /**
+    * For Java controllers: additionally carries over the Http.Context of the calling thread, so the task can use
+    * request() and response(). Must be obtained on the action's thread.
+    */
+  def httpContext: ExecutionContext =
+    HttpExecution.fromThread(context)
+
+  private def propagatingReplicaRouting(ec: ExecutionContext): ExecutionContext = new ExecutionContext {
+    def execute(runnable: Runnable): Unit = {
+      val reading = ReadReplica.isRouted
+      ec.execute(new Runnable {
+        def run(): Unit = {
+          val previous = if (reading) Some(ReadReplica.enter()) else None
+          try runnable.run()
+          finally previous.foreach(ReadReplica.exit)
+        }
+      })
+    }
+
+    def reportFailure(t: Throwable): Unit = ec.reportFailure(t)
+  }
+
+}
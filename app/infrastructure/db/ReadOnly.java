@@ -0,0 +1,17 @@
+package infrastructure.db;
+
+import play.mvc.With;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an action that only reads, so that its queries are served by the {@link ReadReplica}.
+ */
+@With(ReadOnlyAction.class)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadOnly {
+}
@@ -0,0 +1,22 @@
+package infrastructure.db;
+
+import play.libs.F;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+
+/**
+ * Routes the queries of an action annotated with {@link ReadOnly} to the {@link ReadReplica}.
+ */
+public class ReadOnlyAction extends Action<ReadOnly> {
+
+	@Override
+	public F.Promise<Result> call(final Http.Context ctx) throws Throwable {
+		final boolean previous = ReadReplica.enter();
+		try {
+			return delegate.call(ctx);
+		} finally {
+			ReadReplica.exit(previous);
+		}
+	}
+}
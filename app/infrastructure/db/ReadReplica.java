@@ -0,0 +1,112 @@
+package infrastructure.db;
+
+import com.avaje.ebean.EbeanServer;
+import com.avaje.ebean.EbeanServerFactory;
+import com.avaje.ebean.config.ServerConfig;
+import play.Application;
+import play.Configuration;
+import play.Logger;
+import play.db.DB;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A second, read-only Ebean server on the "replica" datasource (db.replica in application.conf).
+ *
+ * Actions that only read mark themselves with {@link ReadOnly} (or, from Scala, run their queries between
+ * {@link #enter()} and {@link #exit(boolean)}); the domain finders then send their queries to the replica.
+ * Everything else, including all @Transactional writes, keeps using the primary. Queries routed to the replica,
+ * lookups by id included, neither read nor fill the L2 bean cache, so the replica never serves stale cached
+ * beans. Without a db.replica configuration all queries go to the primary.
+ */
+public final class ReadReplica {
+
+	public static final String SERVER = "replica";
+
+	private static final ThreadLocal<Boolean> reading = new ThreadLocal<>();
+	private static volatile EbeanServer server;
+
+	private ReadReplica() {
+	}
+
+	public static void start(final Application app) {
+		final Configuration db = app.configuration().getConfig("db." + SERVER);
+		if (db == null) {
+			return;
+		}
+		final ServerConfig config = new ServerConfig();
+		config.setName(SERVER);
+		config.setDataSource(DB.getDataSource(SERVER));
+		config.setDefaultServer(false);
+		config.setRegister(true);
+		config.setDdlGenerate(false);
+		config.setDdlRun(false);
+		// Register the same classes as the default server, read like the Ebean plugin reads ebean.default
+		final Set<String> classes = new HashSet<>();
+		for (final String load : app.configuration().getString("ebean.default").split(",")) {
+			final String trimmed = load.trim();
+			if (trimmed.endsWith(".*")) {
+				classes.addAll(play.libs.Classpath.getTypes(app, trimmed.substring(0, trimmed.length() - 2)));
+			} else {
+				classes.add(trimmed);
+			}
+		}
+		for (final String clazz : classes) {
+			try {
+				config.addClass(Class.forName(clazz, true, app.classloader()));
+			} catch (ClassNotFoundException ex) {
+				throw new IllegalStateException("Cannot register class " + clazz + " in the replica Ebean server", ex);
+			}
+		}
+		server = EbeanServerFactory.create(config);
+		Logger.info("Routing read-only actions to the " + SERVER + " datasource");
+	}
+
+	public static void stop() {
+		final EbeanServer stopping = server;
+		server = null;
+		if (stopping != null) {
+			stopping.shutdown(false, false);
+		}
+	}
+
+	/**
+	 * The replica Ebean server, or null if no replica is configured.
+	 */
+	public static EbeanServer server() {
+		return server;
+	}
+
+	/**
+	 * True if queries on the current thread should go to the replica.
+	 */
+	public static boolean isReading() {
+		return server != null && Boolean.TRUE.equals(reading.get());
+	}
+
+	/**
+	 * True if the current thread is in a read-only action, whether or not a replica is configured.
+	 */
+	public static boolean isRouted() {
+		return Boolean.TRUE.equals(reading.get());
+	}
+
+	/**
+	 * Routes the queries of the current thread to the replica, until {@link #exit(boolean)} is called with the
+	 * returned value.
+	 */
+	public static boolean enter() {
+		final boolean previous = Boolean.TRUE.equals(reading.get());
+		reading.set(Boolean.TRUE);
+		return previous;
+	}
+
+	public static void exit(final boolean previous) {
+		if (previous) {
+			reading.set(Boolean.TRUE);
+		} else {
+			reading.remove();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package infrastructure.metrics;
+
+import org.HdrHistogram.AtomicHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records latencies into a fixed-size, lock-free HDR histogram (microsecond resolution, 1% precision), so that
+ * recording never allocates or blocks. Latencies above one minute are clamped.
+ */
+public class LatencyRecorder {
+
+	static final long highestTrackableMicros = TimeUnit.MINUTES.toMicros(1);
+	static final double[] quantiles = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final AtomicHistogram histogram = new AtomicHistogram(highestTrackableMicros, 2);
+	private final AtomicLong sumMicros = new AtomicLong();
+
+	public void record(final long nanos) {
+		final long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0L), highestTrackableMicros);
+		histogram.recordValue(micros);
+		sumMicros.addAndGet(micros);
+	}
+
+	public long count() {
+		return histogram.getTotalCount();
+	}
+
+	public double sumSeconds() {
+		return sumMicros.get() / 1e6;
+	}
+
+	public double quantileSeconds(final double quantile) {
+		return histogram.getValueAtPercentile(quantile * 100) / 1e6;
+	}
+}
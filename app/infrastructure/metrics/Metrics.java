@@ -0,0 +1,133 @@
+package infrastructure.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide registry of per-route request metrics, named timers (e.g. "db") and counters, rendered in the Prometheus
+ * text exposition format by {@link #prometheusText()}.
+ *
+ * Metrics objects are created once per route or timer name and then looked up without allocating, so the
+ * request path only touches atomic counters and histograms.
+ */
+public final class Metrics {
+
+	public static final String UNMATCHED = "unmatched";
+
+	static final AtomicLong inFlight = new AtomicLong();
+
+	private static final ConcurrentMap<String, ConcurrentMap<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, LatencyRecorder> timers = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+	private Metrics() {
+	}
+
+	public static RouteMetrics route(final String verb, final String pattern) {
+		ConcurrentMap<String, RouteMetrics> byPattern = routes.get(verb);
+		if (byPattern == null) {
+			routes.putIfAbsent(verb, new ConcurrentHashMap<String, RouteMetrics>());
+			byPattern = routes.get(verb);
+		}
+		RouteMetrics metrics = byPattern.get(pattern);
+		if (metrics == null) {
+			byPattern.putIfAbsent(pattern, new RouteMetrics(verb, pattern));
+			metrics = byPattern.get(pattern);
+		}
+		return metrics;
+	}
+
+	/**
+	 * The metrics shared by all requests that match no route, whatever their method and path.
+	 */
+	public static RouteMetrics unmatched() {
+		return route("ANY", UNMATCHED);
+	}
+
+	public static LatencyRecorder timer(final String name) {
+		LatencyRecorder timer = timers.get(name);
+		if (timer == null) {
+			timers.putIfAbsent(name, new LatencyRecorder());
+			timer = timers.get(name);
+		}
+		return timer;
+	}
+
+	public static AtomicLong counter(final String name) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counters.putIfAbsent(name, new AtomicLong());
+			counter = counters.get(name);
+		}
+		return counter;
+	}
+
+	public static String prometheusText() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("# HELP http_requests_in_flight Requests currently being served\n");
+		sb.append("# TYPE http_requests_in_flight gauge\n");
+		sb.append("http_requests_in_flight ").append(inFlight.get()).append('\n');
+
+		sb.append("# HELP http_request_duration_seconds Request latency per route\n");
+		sb.append("# TYPE http_request_duration_seconds summary\n");
+		for (final Map<String, RouteMetrics> byPattern : routes.values()) {
+			for (final RouteMetrics route : byPattern.values()) {
+				summary(sb, "http_request_duration_seconds", routeLabels(route), route.latency);
+			}
+		}
+		sb.append("# HELP http_request_errors_total Requests per route answered with an error status\n");
+		sb.append("# TYPE http_request_errors_total counter\n");
+		for (final Map<String, RouteMetrics> byPattern : routes.values()) {
+			for (final RouteMetrics route : byPattern.values()) {
+				final String labels = routeLabels(route);
+				sb.append("http_request_errors_total{").append(labels).append(",class=\"5xx\"} ")
+					.append(route.serverErrors.get()).append('\n');
+				sb.append("http_request_errors_total{").append(labels).append(",class=\"4xx\"} ")
+					.append(route.clientErrors.get()).append('\n');
+			}
+		}
+		sb.append("# HELP http_route_requests_in_flight Requests currently being served per route\n");
+		sb.append("# TYPE http_route_requests_in_flight gauge\n");
+		for (final Map<String, RouteMetrics> byPattern : routes.values()) {
+			for (final RouteMetrics route : byPattern.values()) {
+				sb.append("http_route_requests_in_flight{").append(routeLabels(route)).append("} ")
+					.append(route.inFlight.get()).append('\n');
+			}
+		}
+
+		sb.append("# HELP timer_duration_seconds Time spent in instrumented subsystems, e.g. the database\n");
+		sb.append("# TYPE timer_duration_seconds summary\n");
+		for (final Map.Entry<String, LatencyRecorder> timer : timers.entrySet()) {
+			summary(sb, "timer_duration_seconds", "timer=\"" + escape(timer.getKey()) + "\"", timer.getValue());
+		}
+		for (final Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			sb.append("# TYPE ").append(counter.getKey()).append(" counter\n");
+			sb.append(counter.getKey()).append(' ').append(counter.getValue().get()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void summary(final StringBuilder sb, final String name, final String labels, final LatencyRecorder recorder) {
+		for (final double quantile : LatencyRecorder.quantiles) {
+			sb.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+				.append(format(recorder.quantileSeconds(quantile))).append('\n');
+		}
+		sb.append(name).append("_sum{").append(labels).append("} ").append(format(recorder.sumSeconds())).append('\n');
+		sb.append(name).append("_count{").append(labels).append("} ").append(recorder.count()).append('\n');
+	}
+
+	private static String routeLabels(final RouteMetrics route) {
+		return "method=\"" + escape(route.verb) + "\",route=\"" + escape(route.pattern) + "\"";
+	}
+
+	private static String escape(final String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String format(final double value) {
+		return String.format(Locale.ROOT, "%.6f", value);
+	}
+}
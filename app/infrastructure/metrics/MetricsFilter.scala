@@ -0,0 +1,32 @@
+package infrastructure.metrics
+
+import play.api.Routes
+import play.api.libs.iteratee.Execution.Implicits.trampoline
+import play.api.mvc.{Filter, RequestHeader, Result}
+
+import scala.concurrent.Future
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success}
+
+/**
+  * Records latency, status and in-flight counts of every request against the route it was dispatched to,
+  * as declared in conf/routes (requests that match no route are recorded as "unmatched").
+  */
+class MetricsFilter extends Filter {
+
+  def apply(next: RequestHeader => Future[Result])(rh: RequestHeader): Future[Result] = {
+    // Unmatched requests share one key, so made-up methods or paths cannot create new metrics
+    val route = rh.tags.get(Routes.ROUTE_PATTERN) match {
+      case Some(pattern) => Metrics.route(rh.tags(Routes.ROUTE_VERB), pattern)
+      case None => Metrics.unmatched()
+    }
+    val start = route.started()
+    val result = try next(rh) catch { case NonFatal(e) => Future.failed(e) }
+    result.onComplete {
+      case Success(r) => route.completed(start, r.header.status)
+      case Failure(_) => route.completed(start, 500)
+    }
+    result
+  }
+
+}
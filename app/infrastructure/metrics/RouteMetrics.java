@@ -0,0 +1,41 @@
+package infrastructure.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, error and in-flight counts of a single route of conf/routes.
+ */
+public class RouteMetrics {
+
+	public final String verb;
+	public final String pattern;
+	final LatencyRecorder latency = new LatencyRecorder();
+	final AtomicLong serverErrors = new AtomicLong();
+	final AtomicLong clientErrors = new AtomicLong();
+	final AtomicLong inFlight = new AtomicLong();
+
+	RouteMetrics(final String verb, final String pattern) {
+		this.verb = verb;
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Marks the start of a request and returns its start time, to be handed back to {@link #completed}.
+	 */
+	public long started() {
+		inFlight.incrementAndGet();
+		Metrics.inFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	public void completed(final long startNanos, final int status) {
+		latency.record(System.nanoTime() - startNanos);
+		if (status >= 500) {
+			serverErrors.incrementAndGet();
+		} else if (status >= 400) {
+			clientErrors.incrementAndGet();
+		}
+		inFlight.decrementAndGet();
+		Metrics.inFlight.decrementAndGet();
+	}
+}
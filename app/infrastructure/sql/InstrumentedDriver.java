@@ -0,0 +1,177 @@
+package infrastructure.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver that wraps another one and reports every executed statement, with its duration, and every row
+ * read to {@link SqlStats}. It is selected with a "jdbc:instrumented:" URL prefix, e.g.
+ *
+ * db.default.driver=infrastructure.sql.InstrumentedDriver
+ * db.default.url="jdbc:instrumented:h2:mem:play"
+ *
+ * and delegates to whichever registered driver accepts the URL without the "instrumented:" part.
+ */
+public class InstrumentedDriver implements Driver {
+
+	public static final String PREFIX = "jdbc:instrumented:";
+
+	static {
+		try {
+			DriverManager.registerDriver(new InstrumentedDriver());
+		} catch (SQLException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	@Override
+	public Connection connect(final String url, final Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		final String target = targetUrl(url);
+		final Connection connection = delegateFor(target).connect(target, info);
+		return connection == null ? null : proxy(Connection.class, new ConnectionHandler(connection));
+	}
+
+	@Override
+	public boolean acceptsURL(final String url) {
+		return url != null && url.startsWith(PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) throws SQLException {
+		final String target = targetUrl(url);
+		return delegateFor(target).getPropertyInfo(target, info);
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	private static String targetUrl(final String url) {
+		return "jdbc:" + url.substring(PREFIX.length());
+	}
+
+	private static Driver delegateFor(final String url) throws SQLException {
+		try {
+			return DriverManager.getDriver(url);
+		} catch (SQLException ex) {
+			// The target driver may not be visible to DriverManager from this class loader (e.g. in dev mode)
+			for (final Driver driver : ServiceLoader.load(Driver.class, InstrumentedDriver.class.getClassLoader())) {
+				if (!(driver instanceof InstrumentedDriver) && driver.acceptsURL(url)) {
+					return driver;
+				}
+			}
+			throw ex;
+		}
+	}
+
+	private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(InstrumentedDriver.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	private static Object forward(final Object target, final Method method, final Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private static class ConnectionHandler implements InvocationHandler {
+		private final Connection connection;
+
+		ConnectionHandler(final Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final Object result = forward(connection, method, args);
+			switch (method.getName()) {
+				case "createStatement":
+					return proxy(Statement.class, new StatementHandler((Statement) result, null));
+				case "prepareStatement":
+					return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+				case "prepareCall":
+					return proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+				default:
+					return result;
+			}
+		}
+	}
+
+	private static class StatementHandler implements InvocationHandler {
+		private final Statement statement;
+		private final String preparedSql;
+
+		StatementHandler(final Statement statement, final String preparedSql) {
+			this.statement = statement;
+			this.preparedSql = preparedSql;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final String name = method.getName();
+			if (name.startsWith("execute")) {
+				final String sql = preparedSql != null ? preparedSql
+					: args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+					: "batch";
+				final long start = System.nanoTime();
+				try {
+					return wrapResultSet(forward(statement, method, args));
+				} finally {
+					SqlStats.statementExecuted(sql, System.nanoTime() - start);
+				}
+			} else if (name.equals("getResultSet") || name.equals("getGeneratedKeys")) {
+				return wrapResultSet(forward(statement, method, args));
+			} else {
+				return forward(statement, method, args);
+			}
+		}
+
+		private static Object wrapResultSet(final Object result) {
+			return result instanceof ResultSet ? proxy(ResultSet.class, new ResultSetHandler((ResultSet) result)) : result;
+		}
+	}
+
+	private static class ResultSetHandler implements InvocationHandler {
+		private final ResultSet resultSet;
+
+		ResultSetHandler(final ResultSet resultSet) {
+			this.resultSet = resultSet;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final Object result = forward(resultSet, method, args);
+			if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+				SqlStats.rowRead();
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package infrastructure.sql
+
+import infrastructure.metrics.Metrics
+import play.api.libs.iteratee.Execution.Implicits.trampoline
+import play.api.http.{HeaderNames, HttpProtocol}
+import play.api.mvc._
+import play.api.{Logger, Mode, Play}
+
+import scala.collection.JavaConverters._
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.Failure
+import scala.util.control.NonFatal
+
+/**
+  * Binds fresh [[SqlStats]] to every routed action while it runs, and reports them once the response body has
+  * been sent: repeated identical statements are logged as suspected N+1 queries. In dev mode the counts are also
+  * added to the response as X-SQL-* headers, except on chunked responses, whose headers go out before the body
+  * runs its queries.
+  *
+  * Work that an action hands to a Future only sees the stats if it runs on an execution context obtained from
+  * [[SqlInstrumentation.propagating]]. Work that outlives the action, like producing a chunked body, must bind
+  * the request's stats itself with [[SqlInstrumentation.boundTo]].
+  */
+object SqlInstrumentation {
+
+  private val logger = Logger("sql")
+
+  private def repeatThreshold =
+    Play.maybeApplication.flatMap(_.configuration.getInt("sql.repeatThreshold")).getOrElse(3)
+
+  private def isDev = Play.maybeApplication.exists(_.mode == Mode.Dev)
+
+  def instrument(handler: Handler): Handler = handler match {
+    case action: Action[_] => instrumentAction(action)
+    case other => other
+  }
+
+  private def instrumentAction[A](action: Action[A]): Action[A] = action match {
+    // Keep the route tags (used by the metrics filter) that the router attaches to the request
+    case tagging: RequestTaggingHandler =>
+      new InstrumentedAction(action) with RequestTaggingHandler {
+        def tagRequest(rh: RequestHeader) = tagging.tagRequest(rh)
+      }
+    case _ => new InstrumentedAction(action)
+  }
+
+  private class InstrumentedAction[A](action: Action[A]) extends Action[A] {
+    def parser = action.parser
+
+    def apply(request: Request[A]): Future[Result] = {
+      val stats = new SqlStats()
+      val result =
+        try boundTo(stats)(action(request))
+        catch { case NonFatal(e) => Future.failed(e) }
+      result.andThen {
+        case Failure(_) => report(stats, request)
+      }.map { r =>
+        val reported = r.copy(body = r.body.onDoneEnumerating(report(stats, request)))
+        if (isDev && !isChunked(r)) reported.withHeaders(
+          "X-SQL-Statements" -> stats.statements.toString,
+          "X-SQL-Rows" -> stats.rows.toString,
+          "X-SQL-Time-Ms" -> stats.millis.toString)
+        else reported
+      }
+    }
+  }
+
+  private def isChunked(result: Result): Boolean =
+    result.header.headers.get(HeaderNames.TRANSFER_ENCODING).contains(HttpProtocol.CHUNKED)
+
+  private def report(stats: SqlStats, request: RequestHeader): Unit =
+    for ((sql, count) <- stats.repeated(repeatThreshold).asScala) {
+      Metrics.counter("sql_suspected_n_plus_one_total").incrementAndGet()
+      logger.warn(s"Suspected N+1 in ${request.method} ${request.path}: $count executions of $sql")
+    }
+
+  /**
+    * Runs body with the given stats (or none, if null) bound to the current thread.
+    */
+  def boundTo[T](stats: SqlStats)(body: => T): T = {
+    val previous = SqlStats.bind(stats)
+    try body
+    finally SqlStats.bind(previous)
+  }
+
+  /**
+    * Wraps an execution context so that tasks run with the [[SqlStats]] that were bound to the thread which
+    * submitted them.
+    */
+  def propagating(ec: ExecutionContext): ExecutionContext = new ExecutionContext {
+    def execute(runnable: Runnable): Unit = {
+      val stats = SqlStats.current()
+      ec.execute(new Runnable {
+        def run(): Unit = boundTo(stats)(runnable.run())
+      })
+    }
+
+    def reportFailure(t: Throwable): Unit = ec.reportFailure(t)
+  }
+
+}
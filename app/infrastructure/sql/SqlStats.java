@@ -0,0 +1,95 @@
+package infrastructure.sql;
+
+import infrastructure.metrics.Metrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL statements, rows and database time of a single request. The stats of the request being served are bound
+ * to the current thread (see {@link SqlInstrumentation}), and {@link InstrumentedDriver} reports into them.
+ *
+ * Statements executed outside of a request (evolutions, background work) only count towards the global metrics.
+ */
+public class SqlStats {
+
+	private static final ThreadLocal<SqlStats> current = new ThreadLocal<>();
+
+	private final Map<String, Integer> executions = new HashMap<>();
+	private int statements;
+	private long rows;
+	private long nanos;
+
+	public static SqlStats current() {
+		return current.get();
+	}
+
+	/**
+	 * Binds the given stats (or none, if null) to the current thread and returns the previously bound ones.
+	 */
+	public static SqlStats bind(final SqlStats stats) {
+		final SqlStats previous = current.get();
+		if (stats == null) {
+			current.remove();
+		} else {
+			current.set(stats);
+		}
+		return previous;
+	}
+
+	static void statementExecuted(final String sql, final long nanos) {
+		Metrics.timer("db").record(nanos);
+		Metrics.counter("sql_statements_total").incrementAndGet();
+		final SqlStats stats = current.get();
+		if (stats != null) {
+			stats.executed(sql, nanos);
+		}
+	}
+
+	static void rowRead() {
+		Metrics.counter("sql_rows_total").incrementAndGet();
+		final SqlStats stats = current.get();
+		if (stats != null) {
+			stats.read();
+		}
+	}
+
+	private synchronized void executed(final String sql, final long nanos) {
+		final Integer count = executions.get(sql);
+		executions.put(sql, count == null ? 1 : count + 1);
+		statements++;
+		this.nanos += nanos;
+	}
+
+	private synchronized void read() {
+		rows++;
+	}
+
+	public synchronized int statements() {
+		return statements;
+	}
+
+	public synchronized long rows() {
+		return rows;
+	}
+
+	public synchronized long millis() {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * Returns the statements executed at least threshold times, with their execution counts. Identical SQL
+	 * repeated within one request is the signature of lazy loading in a loop (N+1 queries).
+	 */
+	public synchronized Map<String, Integer> repeated(final int threshold) {
+		final Map<String, Integer> repeated = new LinkedHashMap<>();
+		for (final Map.Entry<String, Integer> execution : executions.entrySet()) {
+			if (execution.getValue() >= threshold) {
+				repeated.put(execution.getKey(), execution.getValue());
+			}
+		}
+		return repeated;
+	}
+}
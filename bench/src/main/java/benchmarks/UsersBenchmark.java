@@ -0,0 +1,106 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import play.data.Form;
+import play.libs.Json;
+import play.test.FakeApplication;
+
+import static play.test.Helpers.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.*;
+
+import domain.model.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request CPU cost of the hot paths in controllers.api.Users: form binding and validation, error body
+ * construction and profile serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UsersBenchmark {
+
+	static final Form<User> userForm = Form.form(User.class);
+	static final Form<User.Profile> profileForm = Form.form(User.Profile.class);
+
+	FakeApplication app;
+	JsonNode validUser;
+	JsonNode invalidUser;
+	JsonNode validProfile;
+	Form<User> invalidFilled;
+	User user;
+
+	@Setup
+	public void setUp() {
+		// Validation messages are resolved through the application's Messages
+		app = fakeApplication(inMemoryDatabase());
+		start(app);
+		validUser = Json.toJson(ImmutableMap.of(
+			"username", "johndoe",
+			"password", "secret",
+			"profile", ImmutableMap.of(
+				"email", "john@example.com",
+				"firstName", "John",
+				"lastName", "Doe",
+				"age", 30
+				)
+			));
+		invalidUser = Json.toJson(ImmutableMap.of(
+			"username", "",
+			"profile", ImmutableMap.of(
+				"email", "not an email",
+				"lastName", "Doe"
+				)
+			));
+		validProfile = validUser.path("profile");
+		invalidFilled = userForm.bind(invalidUser);
+		user = userForm.bind(validUser).get();
+	}
+
+	@TearDown
+	public void tearDown() {
+		stop(app);
+	}
+
+	@Benchmark
+	public User bindValidUser() {
+		return userForm.bind(validUser).get();
+	}
+
+	@Benchmark
+	public Form<User> bindInvalidUser() {
+		return userForm.bind(invalidUser);
+	}
+
+	@Benchmark
+	public User.Profile bindValidProfile() {
+		return profileForm.bind(validProfile).get();
+	}
+
+	@Benchmark
+	public JsonNode errorsAsJson() {
+		return invalidFilled.errorsAsJson();
+	}
+
+	@Benchmark
+	public JsonNode profileToJson() {
+		return Json.toJson(user.profile);
+	}
+
+	@Benchmark
+	public JsonNode userNameTakenBody() {
+		return Json.toJson(ImmutableMap.of("username", ImmutableList.of("User name johndoe is already taken")));
+	}
+
+	@Benchmark
+	public JsonNode userNotFoundBody() {
+		return Json.toJson(ImmutableMap.of("error", "User with id johndoe cannot be found"));
+	}
+
+}
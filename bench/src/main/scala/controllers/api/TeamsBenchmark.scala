@@ -0,0 +1,72 @@
+package controllers.api
+
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.TimeUnit
+
+import domain.model.{Team, User}
+import org.openjdk.jmh.annotations._
+import play.api.libs.json._
+
+/**
+  * Per-request CPU cost of the hot paths in [[controllers.api.Teams]]: form binding, and team and member
+  * serialization for realistic team sizes, both as a materialized JsValue and streamed through Jackson.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class TeamsBenchmark {
+
+  @Param(Array("10", "200"))
+  var teamSize: Int = _
+
+  var team: Team = _
+  var members: Seq[User] = _
+  val memberIdJson = Json.obj("identity" -> "johndoe")
+  val teamNameJson = Json.obj("name" -> "Team Foo")
+
+  @Setup
+  def setUp(): Unit = {
+    members = (1 to teamSize).map { i =>
+      val u = new User()
+      u.username = s"user$i"
+      u.password = "secret"
+      u.profile = new User.Profile()
+      u.profile.email = s"user$i@example.com"
+      u.profile.firstName = "John"
+      u.profile.lastName = s"Doe $i"
+      u.profile.age = 30
+      u
+    }
+    team = new Team()
+    team.id = 1L
+    team.name = "Team Foo"
+    team.memberCount = teamSize
+  }
+
+  @Benchmark
+  def bindTeamName() = Teams.teamNameForm.bind(teamNameJson)
+
+  @Benchmark
+  def bindMemberId() = Teams.memberIdForm.bind(memberIdJson)
+
+  @Benchmark
+  def teamToJson() = Json.toJson(team)(Teams.teamWrites)
+
+  @Benchmark
+  def membersToJson() = Json.toJson(members)(Writes.seq(Teams.memberWrites))
+
+  @Benchmark
+  def membersStreamed() = {
+    val out = new ByteArrayOutputStream()
+    val gen = play.libs.Json.mapper().getFactory.createGenerator(out)
+    gen.writeStartArray()
+    members.foreach(Teams.writeMember(gen, _))
+    gen.writeEndArray()
+    gen.close()
+    out.toByteArray
+  }
+
+}
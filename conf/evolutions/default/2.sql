@@ -0,0 +1,11 @@
+# --- !Ups
+
+alter table user add column version bigint not null default 1;
+
+alter table team add column version bigint not null default 1;
+
+# --- !Downs
+
+alter table team drop column version;
+
+alter table user drop column version;
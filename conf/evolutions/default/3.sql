@@ -0,0 +1,9 @@
+# --- !Ups
+
+alter table team add column member_count integer not null default 0;
+
+update team set member_count = (select count(*) from teamMembers where teamMembers.teamId = team.id);
+
+# --- !Downs
+
+alter table team drop column member_count;
@@ -0,0 +1,7 @@
+# --- !Ups
+
+alter table team add constraint uq_team_name unique (name);
+
+# --- !Downs
+
+alter table team drop constraint if exists uq_team_name;
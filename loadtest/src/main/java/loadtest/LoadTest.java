@@ -0,0 +1,129 @@
+package loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SynchronizedHistogram;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the REST API of a running server with the {@link Scenario} request mix at a fixed rate, using a pool
+ * of concurrent clients, and reports throughput and latency percentiles per route.
+ *
+ * Requests are issued open-loop: each one has an intended start time derived from the rate, and its latency
+ * is measured from that time, so queueing behind a slow server is counted instead of hidden.
+ *
+ * Arguments (all optional, as key=value):
+ *
+ * url=http://localhost:9000/api/ rate=200 clients=32 duration=60 warmup=10 users=100 teams=10
+ *
+ * (rate in requests per second, duration and warmup in seconds)
+ */
+public class LoadTest {
+
+	private static final long maxLatencyNanos = TimeUnit.MINUTES.toNanos(1);
+
+	private final Scenario scenario;
+	private final Map<Scenario.Route, Histogram> latencies = new EnumMap<>(Scenario.Route.class);
+	private final Map<Scenario.Route, AtomicLong> errors = new EnumMap<>(Scenario.Route.class);
+
+	LoadTest(final Scenario scenario) {
+		this.scenario = scenario;
+		for (final Scenario.Route route : Scenario.Route.values()) {
+			latencies.put(route, new SynchronizedHistogram(maxLatencyNanos, 3));
+			errors.put(route, new AtomicLong());
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> conf = parseArgs(args);
+		final Scenario scenario = new Scenario(conf.containsKey("url") ? conf.get("url") : "http://localhost:9000/api/");
+		final int rate = intArg(conf, "rate", 200);
+		final int clients = intArg(conf, "clients", 32);
+		final int duration = intArg(conf, "duration", 60);
+		final int warmup = intArg(conf, "warmup", 10);
+
+		scenario.setUp(intArg(conf, "users", 100), intArg(conf, "teams", 10));
+		final LoadTest test = new LoadTest(scenario);
+		System.out.println("Warming up for " + warmup + "s at " + rate + " req/s with " + clients + " clients");
+		test.run(rate, clients, warmup, false);
+		System.out.println("Measuring for " + duration + "s");
+		test.run(rate, clients, duration, true);
+		test.report(duration);
+	}
+
+	void run(final int rate, final int clients, final int seconds, final boolean record) throws InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(clients);
+		final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		final long start = System.nanoTime();
+		final long total = (long) rate * seconds;
+		for (long i = 0; i < total; i++) {
+			final long intended = start + i * intervalNanos;
+			final long wait = intended - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			final Scenario.Route route = scenario.nextRoute();
+			pool.execute(new Runnable() {
+				public void run() {
+					int status;
+					try {
+						status = scenario.execute(route);
+					} catch (Exception ex) {
+						status = -1;
+					}
+					if (record) {
+						latencies.get(route).recordValue(Math.min(System.nanoTime() - intended, maxLatencyNanos));
+						if (status < 200 || status >= 400) {
+							errors.get(route).incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	void report(final int seconds) {
+		System.out.println(String.format("%-48s %8s %8s %9s %9s %9s %9s %9s",
+			"route", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+		for (final Scenario.Route route : Scenario.Route.values()) {
+			final Histogram h = latencies.get(route);
+			System.out.println(String.format("%-48s %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f",
+				route.pattern,
+				h.getTotalCount(),
+				errors.get(route).get(),
+				h.getTotalCount() / (double) seconds,
+				millis(h.getValueAtPercentile(50)),
+				millis(h.getValueAtPercentile(99)),
+				millis(h.getValueAtPercentile(99.9)),
+				millis(h.getMaxValue())));
+		}
+	}
+
+	private static double millis(final long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static Map<String, String> parseArgs(final String[] args) {
+		final Map<String, String> conf = new HashMap<>();
+		for (final String arg : args) {
+			final int eq = arg.indexOf('=');
+			if (eq <= 0) {
+				throw new IllegalArgumentException("Expected key=value but got " + arg);
+			}
+			conf.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		return conf;
+	}
+
+	private static int intArg(final Map<String, String> conf, final String key, final int defaultValue) {
+		return conf.containsKey(key) ? Integer.parseInt(conf.get(key)) : defaultValue;
+	}
+}
@@ -0,0 +1,173 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The request mix replayed by the load test: the user, profile and team routes of conf/routes, weighted
+ * roughly like client traffic (reads dominate), against users and teams created up front.
+ */
+class Scenario {
+
+	enum Route {
+		REGISTER("POST /api/users", 5),
+		GET_PROFILE("GET /api/users/:userName/profile", 35),
+		UPDATE_PROFILE("PUT /api/users/:userName/profile", 5),
+		GET_TEAM("GET /api/teams/:teamId", 20),
+		GET_MEMBERS("GET /api/teams/:teamId/members", 20),
+		ADD_MEMBER("POST /api/teams/:teamId/member", 8),
+		REMOVE_MEMBER("DELETE /api/teams/:teamId/members/:memberId", 7);
+
+		final String pattern;
+		final int weight;
+
+		Route(final String pattern, final int weight) {
+			this.pattern = pattern;
+			this.weight = weight;
+		}
+	}
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final int totalWeight;
+
+	static {
+		int sum = 0;
+		for (final Route route : Route.values()) {
+			sum += route.weight;
+		}
+		totalWeight = sum;
+	}
+
+	private final String baseUrl;
+	private final String runId = Long.toString(System.currentTimeMillis(), 36);
+	private final AtomicLong registered = new AtomicLong();
+	private final List<String> users = new ArrayList<>();
+	private final List<Long> teams = new ArrayList<>();
+
+	Scenario(final String baseUrl) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+	}
+
+	/**
+	 * Creates the users and teams the mix reads from. Fails if the server does not accept them.
+	 */
+	void setUp(final int userCount, final int teamCount) throws IOException {
+		for (int i = 0; i < userCount; i++) {
+			final String username = "lt-" + runId + "-" + i;
+			expect(201, call("POST", "users", userJson(username)));
+			users.add(username);
+		}
+		for (int i = 0; i < teamCount; i++) {
+			final Response created = call("POST", "teams", "{\"name\":\"lt-" + runId + "-team-" + i + "\"}");
+			expect(201, created);
+			teams.add(mapper.readTree(created.body).path("id").longValue());
+		}
+	}
+
+	Route nextRoute() {
+		int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (final Route route : Route.values()) {
+			pick -= route.weight;
+			if (pick < 0) {
+				return route;
+			}
+		}
+		throw new IllegalStateException("Route weights do not add up");
+	}
+
+	/**
+	 * Issues one request for the given route and returns its HTTP status.
+	 */
+	int execute(final Route route) throws IOException {
+		switch (route) {
+			case REGISTER:
+				return call("POST", "users", userJson("lt-" + runId + "-r" + registered.incrementAndGet())).status;
+			case GET_PROFILE:
+				return call("GET", "users/" + anyUser() + "/profile", null).status;
+			case UPDATE_PROFILE:
+				return call("PUT", "users/" + anyUser() + "/profile", profileJson()).status;
+			case GET_TEAM:
+				return call("GET", "teams/" + anyTeam(), null).status;
+			case GET_MEMBERS:
+				return call("GET", "teams/" + anyTeam() + "/members", null).status;
+			case ADD_MEMBER:
+				return call("POST", "teams/" + anyTeam() + "/member", "{\"identity\":\"" + anyUser() + "\"}").status;
+			case REMOVE_MEMBER:
+				return call("DELETE", "teams/" + anyTeam() + "/members/" + anyUser(), null).status;
+			default:
+				throw new IllegalArgumentException("Unknown route " + route);
+		}
+	}
+
+	private String anyUser() {
+		return users.get(ThreadLocalRandom.current().nextInt(users.size()));
+	}
+
+	private long anyTeam() {
+		return teams.get(ThreadLocalRandom.current().nextInt(teams.size()));
+	}
+
+	private static String userJson(final String username) {
+		return "{\"username\":\"" + username + "\",\"password\":\"secret\",\"profile\":" + profileJson() + "}";
+	}
+
+	private static String profileJson() {
+		return "{\"email\":\"john@example.com\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":30}";
+	}
+
+	private static void expect(final int status, final Response response) throws IOException {
+		if (response.status != status) {
+			throw new IOException("Set-up request failed with " + response.status + ": " + response.body);
+		}
+	}
+
+	private Response call(final String method, final String path, final String json) throws IOException {
+		final HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		conn.setRequestMethod(method);
+		conn.setConnectTimeout(5000);
+		conn.setReadTimeout(30000);
+		if (json != null) {
+			conn.setDoOutput(true);
+			conn.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream out = conn.getOutputStream()) {
+				out.write(json.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		final int status = conn.getResponseCode();
+		// Always drain the body so the connection goes back to the keep-alive pool
+		final InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+		return new Response(status, in == null ? "" : drain(in));
+	}
+
+	private static String drain(final InputStream in) throws IOException {
+		try (InputStream body = in) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[8192];
+			for (int n; (n = body.read(buf)) != -1; ) {
+				out.write(buf, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static class Response {
+		final int status;
+		final String body;
+
+		Response(final int status, final String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package api;
+
+import org.junit.*;
+import play.test.*;
+import play.libs.ws.*;
+
+import static play.test.Helpers.*;
+import static org.fest.assertions.Assertions.*;
+
+public class MetricsApiTest extends AbstractApiTest {
+
+	static final String metricsEndpoint = baseUrl + "metrics";
+
+	@Test
+	public void requestsAreRecordedPerRoute() {
+		running(testServer(3333), new Runnable() {
+			public void run() {
+				assertThat(createUser("johndoe").getStatus()).isEqualTo(CREATED);
+				assertThat(getUserProfile("johndoe").getStatus()).isEqualTo(OK);
+				final WSResponse resp = WS.url(metricsEndpoint).get().get(timeout);
+				assertThat(resp.getStatus()).isEqualTo(OK);
+				assertThat(resp.getBody()).contains("http_request_duration_seconds_count{method=\"GET\",route=\"/api/users/");
+				assertThat(resp.getBody()).contains("http_request_duration_seconds_count{method=\"POST\",route=\"/api/users\"}");
+			}
+		});
+	}
+
+}
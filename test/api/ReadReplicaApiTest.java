@@ -0,0 +1,112 @@
+package api;
+
+import org.junit.*;
+import play.test.*;
+import play.db.DB;
+import play.libs.ws.*;
+
+import static play.test.Helpers.*;
+import static org.fest.assertions.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.*;
+import com.google.common.io.CharStreams;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Runs the app against two separate databases, to check that the read-only actions query the replica while
+ * the writes go to the primary.
+ */
+public class ReadReplicaApiTest extends AbstractApiTest {
+
+	static final String teamName = java.util.UUID.randomUUID().toString();
+	static final String memberName = java.util.UUID.randomUUID().toString();
+	static final long teamId = 1L;
+
+	static final String membersUrl = teamsEndpoint + "/" + teamId + "/members";
+
+	static TestServer withReplica() {
+		return testServer(3333, fakeApplication(ImmutableMap.of(
+			"db.replica.url", "jdbc:instrumented:h2:mem:replica")));
+	}
+
+	@Test
+	public void readOnlyActionsQueryTheReplica() {
+		running(withReplica(), new Runnable() {
+			public void run() {
+				replicateSchema();
+				assertThat(createTeam(teamName).getStatus()).isEqualTo(CREATED);
+				assertThat(count("default", "select count(*) from team")).isEqualTo(1);
+				assertThat(count("replica", "select count(*) from team")).isEqualTo(0);
+
+				// The team has not reached the replica yet
+				assertThat(WS.url(membersUrl).get().get(timeout).getStatus()).isEqualTo(BAD_REQUEST);
+				assertThat(getTeam(teamId).getStatus()).isEqualTo(BAD_REQUEST);
+
+				// Rows that only the replica has are served by the read-only action
+				execute("replica", "insert into team (id, name) values (" + teamId + ", '" + teamName + "')");
+				execute("replica", "insert into user (username, email, first_name, last_name, age, password) "
+					+ "values ('" + memberName + "', 'john@example.com', 'John', 'Doe', 30, 'secret')");
+				execute("replica", "insert into teamMembers (teamId, memberId) values (" + teamId + ", '" + memberName + "')");
+				final WSResponse resp = WS.url(membersUrl).get().get(timeout);
+				assertThat(resp.getStatus()).isEqualTo(OK);
+				final JsonNode members = resp.asJson();
+				assertThat(members.size()).isEqualTo(1);
+				assertThat(members.get(0).get("identity").asText()).isEqualTo(memberName);
+				assertThat(count("default", "select count(*) from teamMembers")).isEqualTo(0);
+				assertThat(getTeam(teamId).getStatus()).isEqualTo(OK);
+				assertThat(getUserProfile(memberName).getStatus()).isEqualTo(OK);
+				assertThat(count("default", "select count(*) from user")).isEqualTo(0);
+			}
+		});
+	}
+
+	/**
+	 * Stands in for replication: applies the Ups of the default evolutions to the replica database.
+	 */
+	static void replicateSchema() {
+		for (int i = 1; ; i++) {
+			final InputStream in = play.Play.application().resourceAsStream("evolutions/default/" + i + ".sql");
+			if (in == null) {
+				return;
+			}
+			try {
+				final String script = CharStreams.toString(new InputStreamReader(in, Charsets.UTF_8));
+				final String ups = script.split("# --- !Downs")[0].replace("# --- !Ups", "");
+				for (final String sql : ups.split(";")) {
+					if (!sql.trim().isEmpty()) {
+						execute("replica", sql);
+					}
+				}
+			} catch (java.io.IOException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
+	static void execute(String datasource, String sql) {
+		try (Connection connection = DB.getConnection(datasource); Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		} catch (java.sql.SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	static int count(String datasource, String sql) {
+		try (Connection connection = DB.getConnection(datasource);
+				Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			rs.next();
+			return rs.getInt(1);
+		} catch (java.sql.SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+}
@@ -11,8 +11,11 @@ import play.libs.ws.WSResponse;
 import static api.AbstractApiTest.*;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
+import static play.mvc.Http.HeaderNames.ETAG;
+import static play.mvc.Http.HeaderNames.IF_NONE_MATCH;
 import static play.mvc.Http.Status.BAD_REQUEST;
 import static play.mvc.Http.Status.CREATED;
+import static play.mvc.Http.Status.NOT_MODIFIED;
 import static play.mvc.Http.Status.OK;
 import static play.test.Helpers.running;
 import static play.test.Helpers.testServer;
@@ -95,6 +98,28 @@ public class TeamApiTest {
         });
     }
 
+    @Test
+    public void changedTeamIsModified() {
+        running(testServer(3333), new Runnable() {
+            public void run() {
+                assertCREATED(createUser(memberName));
+                assertCREATED(createTeam(teamName));
+                final String etag = getTeam(teamId).getHeader(ETAG);
+                assertThat(etag).isNotNull();
+                final WSResponse unchanged = WS.url(teamsEndpoint + "/" + teamId)
+                        .setHeader(IF_NONE_MATCH, etag).get().get(timeout);
+                assertStatus(unchanged, NOT_MODIFIED);
+
+                assertCREATED(WS.url(memberUrl).post(memberIdentity(memberName)).get(timeout));
+                final WSResponse changed = WS.url(teamsEndpoint + "/" + teamId)
+                        .setHeader(IF_NONE_MATCH, etag).get().get(timeout);
+                assertOK(changed);
+                assertThat(changed.getHeader(ETAG)).isNotEqualTo(etag);
+                assertEquals(1, changed.asJson().path("members").intValue());
+            }
+        });
+    }
+
     @Test
     public void canRemoveMemberFromTeam() {
         running(testServer(3333), new Runnable() {
@@ -108,6 +133,7 @@ public class TeamApiTest {
                         WS.url(teamsEndpoint + "/" + teamId + "/members/" + memberName2).delete().get(timeout);
                 assertOK(resp);
                 assertEquals(Json.toJson(ImmutableList.of(memberDetails(memberName))), resp.asJson());
+                assertEquals(1, getTeam(teamId).asJson().path("members").intValue());
             }
         });
     }
@@ -119,16 +145,94 @@ public class TeamApiTest {
                 assertCREATED(createUser(memberName));
                 assertCREATED(createTeam(teamName));
                 assertCREATED(WS.url(memberUrl).post(memberIdentity(memberName)).get(timeout));
+                assertEquals(1, getTeam(teamId).asJson().path("members").intValue());
 
                 final WSResponse resp =
                         WS.url(teamsEndpoint + "/" + teamId + "/members/" + memberName2).delete().get(timeout);
                 assertOK(resp);
                 assertEquals(Json.toJson(ImmutableList.of(memberDetails(memberName))), resp.asJson());
+                assertEquals(1, getTeam(teamId).asJson().path("members").intValue());
 
                 final WSResponse resp2 =
                         WS.url(teamsEndpoint + "/" + teamId + "/members/" + memberName).delete().get(timeout);
                 assertOK(resp2);
                 assertEquals(Json.toJson(ImmutableList.of()), resp2.asJson());
+                assertEquals(0, getTeam(teamId).asJson().path("members").intValue());
+            }
+        });
+    }
+
+    @Test
+    public void canGetMembersOfTeam() {
+        running(testServer(3333), new Runnable() {
+            public void run() {
+                assertCREATED(createUser(memberName));
+                assertCREATED(createUser(memberName2));
+                assertCREATED(createTeam(teamName));
+                final WSResponse empty = WS.url(teamsEndpoint + "/" + teamId + "/members").get().get(timeout);
+                assertOK(empty);
+                assertEquals(Json.toJson(ImmutableList.of()), empty.asJson());
+
+                assertCREATED(WS.url(memberUrl).post(memberIdentity(memberName)).get(timeout));
+                assertCREATED(WS.url(memberUrl).post(memberIdentity(memberName2)).get(timeout));
+                final WSResponse resp = WS.url(teamsEndpoint + "/" + teamId + "/members").get().get(timeout);
+                assertOK(resp);
+                assertEquals(2, resp.asJson().size());
+            }
+        });
+    }
+
+    @Test
+    public void canGetMembersOfTeamSpanningSeveralChunks() {
+        running(testServer(3333), new Runnable() {
+            public void run() {
+                // More members than Teams.membersChunkSize, so the response is streamed in several chunks
+                final int memberCount = 250;
+                final ImmutableList.Builder<String> names = ImmutableList.builder();
+                for (int i = 0; i < memberCount; i++) {
+                    final String name = String.format("%s-%03d", memberName, i);
+                    assertCREATED(createUser(name));
+                    names.add(name);
+                }
+                assertCREATED(createTeam(teamName));
+                final JsonNode body = Json.toJson(ImmutableMap.of("add", names.build()));
+                assertOK(WS.url(teamsEndpoint + "/" + teamId + "/members").patch(body).get(timeout));
+
+                final WSResponse resp = WS.url(teamsEndpoint + "/" + teamId + "/members").get().get(timeout);
+                assertOK(resp);
+                final JsonNode members = resp.asJson();
+                assertEquals(memberCount, members.size());
+                for (int i = 0; i < memberCount; i++) {
+                    assertEquals(String.format("%s-%03d", memberName, i), members.path(i).path("identity").textValue());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void canAddAndRemoveMembersInBulk() {
+        running(testServer(3333), new Runnable() {
+            public void run() {
+                final String unknownName = java.util.UUID.randomUUID().toString();
+                assertCREATED(createUser(memberName));
+                assertCREATED(createUser(memberName2));
+                assertCREATED(createTeam(teamName));
+                assertCREATED(WS.url(memberUrl).post(memberIdentity(memberName)).get(timeout));
+
+                final String unknownName2 = java.util.UUID.randomUUID().toString();
+                final JsonNode body = Json.toJson(ImmutableMap.of(
+                        "add", ImmutableList.of(memberName2, unknownName),
+                        "remove", ImmutableList.of(memberName, unknownName2)));
+                final WSResponse resp = WS.url(teamsEndpoint + "/" + teamId + "/members").patch(body).get(timeout);
+                assertOK(resp);
+                assertEquals(Json.toJson(ImmutableMap.of(
+                        "added", ImmutableList.of(memberName2),
+                        "removed", ImmutableList.of(memberName),
+                        "unchanged", ImmutableList.of(),
+                        "unknown", ImmutableList.of(unknownName, unknownName2),
+                        "members", 1
+                )), resp.asJson());
+                assertEquals(1, getTeam(teamId).asJson().path("members").intValue());
             }
         });
     }
@@ -43,4 +43,23 @@ public class UserApiTest extends AbstractApiTest {
 		});
 	}
 
+	@Test
+	public void unchangedProfileIsNotModified() {
+		running(testServer(3333), new Runnable()  {
+			public void run() {
+				assertThat(createUser("johndoe").getStatus()).isEqualTo(CREATED);
+				final String etag = getUserProfile("johndoe").getHeader(ETAG);
+				assertThat(etag).isNotNull();
+				final WSResponse unchanged = WS.url(usersEndpoint + "/johndoe/profile")
+					.setHeader(IF_NONE_MATCH, etag).get().get(timeout);
+				assertThat(unchanged.getStatus()).isEqualTo(NOT_MODIFIED);
+				assertThat(updateProfile("johndoe", "johnny@hotmail.com").getStatus()).isEqualTo(OK);
+				final WSResponse changed = WS.url(usersEndpoint + "/johndoe/profile")
+					.setHeader(IF_NONE_MATCH, etag).get().get(timeout);
+				assertThat(changed.getStatus()).isEqualTo(OK);
+				assertThat(changed.getHeader(ETAG)).isNotEqualTo(etag);
+			}
+		});
+	}
+
 }
\ No newline at end of file
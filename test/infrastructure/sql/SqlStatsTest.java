@@ -0,0 +1,73 @@
+package infrastructure.sql;
+
+import org.junit.*;
+
+import static org.fest.assertions.Assertions.*;
+
+import com.google.common.collect.ImmutableMap;
+
+public class SqlStatsTest {
+
+	static final String selectUser = "select username from user where username = ?";
+	static final String selectTeam = "select id from team where id = ?";
+
+	@Test
+	public void statementsRepeatedAtLeastThresholdTimesAreReported() {
+		final SqlStats stats = new SqlStats();
+		final SqlStats previous = SqlStats.bind(stats);
+		try {
+			for (int i = 0; i < 3; i++) {
+				SqlStats.statementExecuted(selectUser, 1000L);
+			}
+			SqlStats.statementExecuted(selectTeam, 1000L);
+			SqlStats.statementExecuted(selectTeam, 1000L);
+		} finally {
+			SqlStats.bind(previous);
+		}
+		assertThat(stats.statements()).isEqualTo(5);
+		assertThat(stats.repeated(3)).isEqualTo(ImmutableMap.of(selectUser, 3));
+		assertThat(stats.repeated(2)).isEqualTo(ImmutableMap.of(selectUser, 3, selectTeam, 2));
+	}
+
+	@Test
+	public void statementsCountOnlyTowardsTheStatsBoundToTheThread() {
+		final SqlStats request = new SqlStats();
+		final SqlStats other = new SqlStats();
+		assertThat(SqlStats.bind(request)).isNull();
+		try {
+			SqlStats.statementExecuted(selectUser, 1000L);
+			SqlStats.rowRead();
+			assertThat(SqlStats.bind(other)).isSameAs(request);
+			SqlStats.statementExecuted(selectTeam, 1000L);
+			assertThat(SqlStats.bind(null)).isSameAs(other);
+			// Outside of a request, statements only count towards the global metrics
+			SqlStats.statementExecuted(selectTeam, 1000L);
+			assertThat(SqlStats.current()).isNull();
+		} finally {
+			SqlStats.bind(null);
+		}
+		assertThat(request.statements()).isEqualTo(1);
+		assertThat(request.rows()).isEqualTo(1);
+		assertThat(other.statements()).isEqualTo(1);
+		assertThat(other.rows()).isEqualTo(0);
+	}
+
+	@Test
+	public void statsAreNotVisibleOnOtherThreads() throws InterruptedException {
+		final SqlStats request = new SqlStats();
+		final SqlStats previous = SqlStats.bind(request);
+		try {
+			final Thread other = new Thread(new Runnable() {
+				public void run() {
+					SqlStats.statementExecuted(selectUser, 1000L);
+				}
+			});
+			other.start();
+			other.join();
+		} finally {
+			SqlStats.bind(previous);
+		}
+		assertThat(request.statements()).isEqualTo(0);
+	}
+
+}